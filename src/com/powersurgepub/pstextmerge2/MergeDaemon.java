@@ -0,0 +1,264 @@
+/*
+ * Copyright 2026 Herb Bowie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.powersurgepub.pstextmerge2;
+
+  import com.powersurgepub.psutils2.logging.*;
+
+  import java.io.*;
+  import java.nio.file.*;
+  import java.text.*;
+  import java.util.*;
+  import java.util.concurrent.*;
+
+/**
+   Keeps a single PSTextMerge engine resident, playing the scripts named
+   by job files as they are dropped into a queue folder. Reusing one warm
+   JVM, and one set of text merge modules, avoids paying for class loading
+   and start-up on every script.
+
+   A job file is a plain text file with an extension of ".job", naming one
+   script file per line. Script names that are not absolute are taken to
+   be relative to the queue folder. Once its scripts have been played, the
+   job file is renamed with an extension of ".done", or ".failed" if any of
+   its scripts could not be found or played, or if it named no scripts at
+   all. A job file named "stop.job" shuts the daemon down.
+
+   Job files should be written elsewhere and then moved into the queue
+   folder, so that they are never seen half-written. As a safeguard, a job
+   file is not picked up until it has gone unmodified for a second.
+
+   @author Herb Bowie
+ */
+public class MergeDaemon {
+
+  public    static  final String  JOB_EXT   = ".job";
+  public    static  final String  DONE_EXT  = ".done";
+  public    static  final String  FAILED_EXT = ".failed";
+  public    static  final String  STOP_JOB  = "stop" + JOB_EXT;
+
+  // How long a job file must sit unmodified before we will read it.
+  private   static  final long    SETTLE_MILLIS = 1000;
+
+  private     PSTextMerge         engine;
+  private     File                queueFolder;
+  private     Logger              log;
+
+  private     boolean             stopRequested = false;
+
+  // Jobs already processed, so that one we could not rename is never replayed.
+  private     Set<File>           processedJobs = new HashSet<File>();
+
+  private     int                 jobCount = 0;
+  private     int                 scriptCount = 0;
+  private     int                 failedJobCount = 0;
+  private     long                totalNanos = 0;
+
+  private     NumberFormat        numberFormat = NumberFormat.getInstance();
+
+  /**
+     Create a new daemon.
+
+     @param engine      The PSTextMerge instance to be used to play scripts.
+     @param queueFolder The folder to be watched for job files.
+     @param log         The logger to receive messages about each job.
+   */
+  public MergeDaemon (PSTextMerge engine, File queueFolder, Logger log) {
+    this.engine = engine;
+    this.queueFolder = queueFolder;
+    this.log = log;
+  }
+
+  /**
+     Process any jobs already waiting, then keep watching the queue folder
+     until a stop job arrives.
+   */
+  public void run() {
+    log.recordEvent (LogEvent.NORMAL,
+        "Merge daemon watching " + queueFolder.toString() + " for job files",
+        false);
+    try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+      queueFolder.toPath().register(watcher,
+          StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+      processQueue();
+      while (! stopRequested) {
+        // Wake up at least once per settle period, so that job files
+        // still settling on the last pass are picked up without waiting
+        // for another event.
+        WatchKey key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+        if (key != null) {
+          key.pollEvents();
+        }
+        processQueue();
+        if (key != null && (! key.reset())) {
+          log.recordEvent (LogEvent.MAJOR,
+              "Queue folder " + queueFolder.toString() + " is no longer available",
+              false);
+          stopRequested = true;
+        }
+      }
+    } catch (IOException e) {
+      log.recordEvent (LogEvent.MAJOR,
+          "I/O error watching queue folder " + queueFolder.toString()
+          + ": " + e.toString(),
+          false);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    log.recordEvent (LogEvent.NORMAL,
+        "Merge daemon stopped after " + numberFormat.format(jobCount)
+        + " jobs (" + numberFormat.format(failedJobCount) + " failed) and "
+        + numberFormat.format(scriptCount) + " scripts in "
+        + numberFormat.format(totalNanos / 1000000) + " ms",
+        false);
+  } // end run method
+
+  /**
+     Process every job file currently in the queue folder, in name order.
+   */
+  private void processQueue() {
+    File[] queued = queueFolder.listFiles();
+    if (queued == null) {
+      return;
+    }
+    Arrays.sort(queued);
+    long settledBefore = System.currentTimeMillis() - SETTLE_MILLIS;
+    for (int i = 0; i < queued.length && (! stopRequested); i++) {
+      File jobFile = queued[i];
+      String jobName = jobFile.getName().toLowerCase();
+      if (jobFile.isFile()
+          && jobName.endsWith(JOB_EXT)
+          && (! processedJobs.contains(jobFile))
+          && jobFile.lastModified() <= settledBefore) {
+        if (jobName.equals(STOP_JOB)) {
+          stopRequested = true;
+          jobFile.delete();
+        } else {
+          processedJobs.add(jobFile);
+          processJob(jobFile);
+        }
+      }
+    }
+  } // end processQueue method
+
+  /**
+     Play each script named in the job file, and then mark the job as done,
+     or as failed if any of its scripts could not be played, or if it named
+     no scripts at all.
+
+     @param jobFile The job file to be processed.
+   */
+  private void processJob(File jobFile) {
+    long jobStart = System.nanoTime();
+    int jobScripts = 0;
+    boolean jobOK = true;
+    try (BufferedReader reader = new BufferedReader(new FileReader(jobFile))) {
+      String line = reader.readLine();
+      while (line != null) {
+        String scriptName = line.trim();
+        if (scriptName.length() > 0) {
+          File scriptFile = new File (scriptName);
+          if (! scriptFile.isAbsolute()) {
+            scriptFile = new File (queueFolder, scriptName);
+          }
+          if (playScript(scriptFile)) {
+            jobScripts++;
+          } else {
+            jobOK = false;
+          }
+        }
+        line = reader.readLine();
+      }
+    } catch (IOException e) {
+      log.recordEvent (LogEvent.MAJOR,
+          "I/O error reading job file " + jobFile.toString()
+          + ": " + e.toString(),
+          false);
+      jobOK = false;
+    }
+    if (jobOK && jobScripts == 0) {
+      log.recordEvent (LogEvent.MAJOR,
+          "Job file " + jobFile.toString() + " names no scripts",
+          false);
+      jobOK = false;
+    }
+    long jobNanos = System.nanoTime() - jobStart;
+    jobCount++;
+    scriptCount = scriptCount + jobScripts;
+    totalNanos = totalNanos + jobNanos;
+    String endExt = DONE_EXT;
+    if (jobOK) {
+      log.recordEvent (LogEvent.NORMAL,
+          "Job " + jobFile.getName() + " played "
+          + numberFormat.format(jobScripts) + " scripts in "
+          + numberFormat.format(jobNanos / 1000000) + " ms",
+          false);
+    } else {
+      failedJobCount++;
+      endExt = FAILED_EXT;
+      log.recordEvent (LogEvent.MAJOR,
+          "Job " + jobFile.getName() + " failed after playing "
+          + numberFormat.format(jobScripts) + " scripts in "
+          + numberFormat.format(jobNanos / 1000000) + " ms",
+          false);
+    }
+
+    String jobName = jobFile.getName();
+    File endFile = new File (queueFolder,
+        jobName.substring(0, jobName.length() - JOB_EXT.length()) + endExt);
+    try {
+      Files.move(jobFile.toPath(), endFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+      processedJobs.remove(jobFile);
+    } catch (IOException e) {
+      log.recordEvent (LogEvent.MAJOR,
+          "Could not rename job file " + jobFile.toString()
+          + " to " + endFile.getName() + "; it will not be played again",
+          false);
+    }
+  } // end processJob method
+
+  /**
+     Play one script, and reset the engine afterwards so that the next
+     script starts from a clean slate. The engine logs the script's own
+     metrics, including its elapsed time.
+
+     @param scriptFile The script to be played.
+
+     @return True if the script was found and played, false otherwise.
+   */
+  private boolean playScript(File scriptFile) {
+    boolean played = false;
+    try {
+      played = engine.playScriptFile(scriptFile.getPath());
+    } catch (RuntimeException e) {
+      log.recordEvent (LogEvent.MAJOR,
+          "Script " + scriptFile.toString() + " failed: " + e.toString(),
+          false);
+    }
+    try {
+      engine.textMergeReset();
+    } catch (RuntimeException e) {
+      log.recordEvent (LogEvent.MAJOR,
+          "Reset after script " + scriptFile.toString() + " failed: "
+          + e.toString(),
+          false);
+    }
+    return played;
+  } // end playScript method
+
+}
@@ -71,12 +71,16 @@ public class PSTextMerge
 	// Default values for tab configurations.
 	private   static  final String  DEFAULT_TABS = "IVSFOTCLA";
 
+  // Exit status when running headless and the script could not be played,
+  // or the daemon's queue folder could not be found.
+  private   static  final int     EXIT_FAILURE = 1;
+
   // Maximum number of records that can be processed in demo mode.
   private		static	final	int			DEMO_MAX_RECORDS = 20;
 
   /** Program Name */
   public    static  final String  PROGRAM_NAME = "PSTextMerge";
-  public    static  final String  PROGRAM_VERSION = "6.20";
+  public    static  final String  PROGRAM_VERSION = "6.30";
 
   private   static  final String  USER_GUIDE
       = "userguide/pstextmerge.html";
@@ -102,6 +106,8 @@ public class PSTextMerge
      Command line arguments.
    */
   private boolean quietMode = false;
+  private boolean daemonMode = false;
+  private boolean metricsToCSV = false;
   private String  startingScript = "";
 
   private ScriptExecutor scriptExecutor = null;
@@ -215,8 +221,8 @@ public class PSTextMerge
 
 	private     GridPane            header;
 	private     Label               programNameLabel;
-	private     Label               fileNameLiteral   = new Label ("File Name: ");
-	private     Label               fileNameLabel      = new Label();
+	private     Label               fileNameLiteral   = null;
+	private     Label               fileNameLabel      = null;
 	private     ImageView           iconLabel;
 
 	private     TabPane         tabs;
@@ -233,6 +239,7 @@ public class PSTextMerge
   private     Tab                 viewTab;
   private     GridPane            viewPane;
   private     TableView <DataRecord> viewTable = null;
+  private     RecordDefinition    viewRecDef = null;
   private     boolean             tabTableBuilt = false;
 
   private     boolean             sortTabBuilt      = false;
@@ -285,6 +292,15 @@ public class PSTextMerge
           if (opt == 'q') {
             quietMode = true;
           }
+          else
+          if (opt == 'd') {
+            daemonMode = true;
+            quietMode = true;
+          }
+          else
+          if (opt == 'm') {
+            metricsToCSV = true;
+          }
         }
       } else {
         startingScript = arg;
@@ -311,9 +327,68 @@ public class PSTextMerge
    @param args the command line arguments
    */
   public static void main(String[] args) {
-    launch(args);
+    PSTextMerge merge = new PSTextMerge(args);
+    if (merge.daemonMode) {
+      if (merge.runDaemon(null)) {
+        System.exit(0);
+      } else {
+        System.exit(EXIT_FAILURE);
+      }
+    }
+    else
+    if (merge.quietMode) {
+      if (merge.runHeadless(null)) {
+        System.exit(0);
+      } else {
+        System.exit(EXIT_FAILURE);
+      }
+    } else {
+      launch(args);
+    }
   }
-  
+
+  /**
+     Play a script in batch mode, without starting the JavaFX toolkit or
+     building any user interface components, and then return control to
+     the caller.
+
+     @param script    Name of script file to be played.
+     @param logIn     Output destination for log messages.
+
+     @return True if the script was found and played, false otherwise.
+   */
+  public static boolean execBatch (String script, Logger logIn) {
+    return execBatch (script, logIn, null);
+  }
+
+  /**
+     Play a script in batch mode, without starting the JavaFX toolkit or
+     building any user interface components, and then return control to
+     the caller.
+
+     @param script    Name of script file to be played.
+     @param logIn     Output destination for log messages.
+     @param scriptExecutor A class that is prepared to execute requested
+                           script callbacks.
+
+     @return True if the script was found and played, false otherwise.
+   */
+  public static boolean execBatch (String script, Logger logIn,
+      ScriptExecutor scriptExecutor) {
+    String[] args = new String[2];
+    args[0] = "-q";
+    args[1] = script;
+    PSTextMerge merge = new PSTextMerge(args);
+    merge.setMainClass (false);
+    merge.setScriptExecutor(scriptExecutor);
+    if (logIn != null) {
+      logIn.recordEvent (LogEvent.NORMAL,
+          PROGRAM_NAME + " " + PROGRAM_VERSION + " invoked in batch mode",
+          false);
+    }
+    return merge.runHeadless(logIn);
+  } // end execBatch method
+
 	/**
      Play a script.
    
@@ -416,26 +491,8 @@ public class PSTextMerge
     
     helpMenu = new Menu("Help"); 
     appFolder = home.getAppFolder();
-    
-    list = new DataRecList();
-    textMergeScript   = new TextMergeScript   (primaryStage, list, this);
-    textMergeInput    = new TextMergeInput    
-        (primaryStage, list, this, textMergeScript);
-    textMergeFilter   = new TextMergeFilter   
-        (primaryStage, list, this, textMergeScript);
-    textMergeSort     = new TextMergeSort
-        (primaryStage, list, this, textMergeScript);
-    textMergeTemplate = new TextMergeTemplate
-        (primaryStage, list, this, textMergeScript);
-    textMergeOutput   = new TextMergeOutput   
-        (primaryStage, list, this, textMergeScript);
-    textMergeScript.allowAutoplay(mainClass);
-    textMergeScript.setInputModule(textMergeInput);
-    textMergeScript.setFilterModule(textMergeFilter);
-    textMergeScript.setOutputModule(textMergeOutput);
-    textMergeScript.setSortModule(textMergeSort);
-    textMergeScript.setTemplateModule(textMergeTemplate);
-    textMergeScript.setScriptExecutor(scriptExecutor);
+
+    createModules();
 
 		try {
 			initComponents(logIn);
@@ -460,36 +517,9 @@ public class PSTextMerge
       Trouble.getShared().setParent(primaryStage);
     }
     calcDefaultScreenLocation();
-    
-    // Open script file if it was passed as a parameter
-    possibleFileName = System.getProperty ("scriptfile", "");
-    if ((possibleFileName != null) && (! possibleFileName.equals (""))) {
-      fileName = possibleFileName;
-    }
-    else
-    if (! startingScript.equals ("")) {
-      fileName = startingScript;
-    } 
-    if (! fileName.equals("")) {
-      File sFile = new File (fileName);
-      boolean scriptFound = (sFile.exists() && sFile.isFile());
-      if (! scriptFound) {
-        logJuggler.recordEvent (LogEvent.MEDIUM, 
-          "MSG001 " + sFile.toString() + " could not be opened as a valid Script File",
-          true);
-        sFile = new File (currentDirectory, fileName);
-        scriptFound = (sFile.exists() && sFile.isFile());
-      }
-      if (scriptFound) {
-        textMergeScript.playScript(sFile);
-      } 
-      else {
-        logJuggler.recordEvent (LogEvent.MEDIUM, 
-          sFile.toString() + " could not be opened as a valid Script File",
-          true);
-      } 
-    } // end if non-blank file name
-    
+
+    playStartingScript();
+
     if (quietMode) {
       wrapThingsUp();
       System.exit(0);
@@ -505,7 +535,220 @@ public class PSTextMerge
       textMergeScript.checkAutoPlay();
     } // end if not quiet mode
   }
-  
+
+  /**
+     Play the starting script without bootstrapping JavaFX: no Stage,
+     menus, tabs or icon images are created, and the modules are built
+     without an owner window. Control is returned to the caller when
+     the script is done, even if playing it threw an exception.
+
+     @param logIn The logger to be used, or null to log to disk.
+
+     @return True if the script was found and played, false otherwise.
+   */
+  private boolean runHeadless(Logger logIn) {
+    initHeadless(logIn);
+    boolean scriptPlayed = false;
+    try {
+      scriptPlayed = playStartingScript();
+    } catch (RuntimeException e) {
+      logJuggler.recordEvent (LogEvent.MAJOR,
+        "Script " + fileName + " failed: " + e.toString(),
+        false);
+    }
+    wrapThingsUp();
+    return scriptPlayed;
+  } // end runHeadless method
+
+  /**
+     Stay resident, without bootstrapping JavaFX, playing the scripts
+     named by job files as they arrive in the queue folder that was
+     passed on the command line.
+
+     @param logIn The logger to be used, or null to log to disk.
+
+     @return True if the queue folder could be watched, false otherwise.
+   */
+  private boolean runDaemon(Logger logIn) {
+    initHeadless(logIn);
+    File queueFolder = new File (startingScript);
+    boolean queueFound = queueFolder.isDirectory();
+    if (queueFound) {
+      MergeDaemon daemon
+          = new MergeDaemon (this, queueFolder, logJuggler.getLogger());
+      daemon.run();
+    } else {
+      logJuggler.recordEvent (LogEvent.MAJOR,
+        queueFolder.toString() + " could not be opened as a Queue Folder",
+        true);
+    }
+    wrapThingsUp();
+    return queueFound;
+  } // end runDaemon method
+
+  /**
+     Get ready to play scripts without any user interface.
+
+     @param logIn The logger to be used, or null to log to disk.
+   */
+  private void initHeadless(Logger logIn) {
+
+    if (mainClass) {
+      home = Home.getShared (this, PROGRAM_NAME, PROGRAM_VERSION);
+    } else {
+      home = Home.getShared();
+    }
+    programVersion = ProgramVersion.getShared();
+    userPrefs = UserPrefs.getShared();
+    appFolder = home.getAppFolder();
+    setupLogging(logIn);
+
+    createModules();
+
+    userDirString = System.getProperty (GlobalConstants.USER_DIR);
+    if ((userDirString != null) && (! userDirString.equals (""))) {
+      textMergeScript.setNormalizerPath(userDirString);
+    }
+    currentDirectory = home.getUserHome();
+    logStartupInfo();
+  } // end initHeadless method
+
+  /**
+     Create the shared list and all of the text merge modules that
+     operate upon it.
+   */
+  private void createModules() {
+    list = new DataRecList();
+    textMergeScript   = new TextMergeScript   (primaryStage, list, this);
+    textMergeInput    = new TextMergeInput
+        (primaryStage, list, this, textMergeScript);
+    textMergeFilter   = new TextMergeFilter
+        (primaryStage, list, this, textMergeScript);
+    textMergeSort     = new TextMergeSort
+        (primaryStage, list, this, textMergeScript);
+    textMergeTemplate = new TextMergeTemplate
+        (primaryStage, list, this, textMergeScript);
+    textMergeOutput   = new TextMergeOutput
+        (primaryStage, list, this, textMergeScript);
+    textMergeScript.allowAutoplay(mainClass);
+    textMergeScript.setInputModule(textMergeInput);
+    textMergeScript.setFilterModule(textMergeFilter);
+    textMergeScript.setOutputModule(textMergeOutput);
+    textMergeScript.setSortModule(textMergeSort);
+    textMergeScript.setTemplateModule(textMergeTemplate);
+    textMergeScript.setScriptExecutor(scriptExecutor);
+  } // end createModules method
+
+  /**
+     Play the script named by the scriptfile system property, or else
+     by the command line, if either was supplied.
+
+     @return True if a script was found and played, false otherwise.
+   */
+  private boolean playStartingScript() {
+    possibleFileName = System.getProperty ("scriptfile", "");
+    if ((possibleFileName != null) && (! possibleFileName.equals (""))) {
+      fileName = possibleFileName;
+    }
+    else
+    if (! startingScript.equals ("")) {
+      fileName = startingScript;
+    }
+    if (fileName.equals("")) {
+      return false;
+    }
+    return playScriptFile (fileName);
+  } // end playStartingScript method
+
+  /**
+     Play the named script, looking for it in the current directory if
+     it can't be found as given.
+
+     @param scriptName The name of the script file to be played.
+
+     @return True if the script was found and played, false otherwise.
+   */
+  boolean playScriptFile(String scriptName) {
+    File sFile = new File (scriptName);
+    boolean scriptFound = (sFile.exists() && sFile.isFile());
+    if (! scriptFound) {
+      logJuggler.recordEvent (LogEvent.MEDIUM,
+        "MSG001 " + sFile.toString() + " could not be opened as a valid Script File",
+        true);
+      sFile = new File (currentDirectory, scriptName);
+      scriptFound = (sFile.exists() && sFile.isFile());
+    }
+    if (scriptFound) {
+      ScriptRunMetrics metrics = new ScriptRunMetrics (sFile);
+      metrics.start();
+      textMergeScript.playScript(sFile);
+      metrics.finish();
+      metrics.logSummary(logJuggler.getLogger());
+      if (metricsToCSV) {
+        try {
+          metrics.appendToCSV();
+        } catch (IOException e) {
+          logJuggler.recordEvent (LogEvent.MEDIUM,
+            "Could not write script metrics to " + metrics.getCSVFile().toString(),
+            false);
+        }
+      }
+    }
+    else {
+      logJuggler.recordEvent (LogEvent.MEDIUM,
+        sFile.toString() + " could not be opened as a valid Script File",
+        true);
+    }
+    return scriptFound;
+  } // end playScriptFile method
+
+  /**
+     Direct log output to the passed logger, if there is one, or else
+     to disk when in quiet mode.
+
+     @param logIn The logger to be used, or null.
+   */
+  private void setupLogging(Logger logIn) {
+    if (logIn != null) {
+      logJuggler.setLogger(logIn);
+    }
+    else
+    if (quietMode) {
+      logJuggler.switchLogOutput (LogJuggler.LOG_DISK_STRING);
+    }
+    else {
+      // Do nothing now -- wait for log text area to be set up later
+      // logJuggler.switchLogOutput (LogJuggler.LOG_TEXT_STRING);
+    }
+    if (logIn == null) {
+      logJuggler.getLogger().setLogAllData (false);
+      logJuggler.getLogger().setLogThreshold (LogEvent.NORMAL);
+    } else {
+      logJuggler.getLogger().setLogAllData (logIn.getLogAllData());
+      logJuggler.getLogger().setLogThreshold (logIn.getLogThreshold());
+    }
+  } // end setupLogging method
+
+  /**
+     Record some basic information about our environment in the log.
+   */
+  private void logStartupInfo() {
+    logJuggler.recordEvent (LogEvent.NORMAL,
+        "Application Folder = " + home.getAppFolder().toString(),
+        false);
+    logJuggler.recordEvent (LogEvent.NORMAL,
+        "Java Virtual Machine = " + System.getProperty("java.vm.name") +
+        " version " + System.getProperty("java.vm.version") +
+        " from " + StringUtils.removeQuotes(System.getProperty("java.vm.vendor")),
+        false);
+    Runtime runtime = Runtime.getRuntime();
+    runtime.gc();
+    NumberFormat numberFormat = NumberFormat.getInstance();
+    logJuggler.recordEvent (LogEvent.NORMAL,
+        "Available Memory = " + numberFormat.format (Runtime.getRuntime().freeMemory()),
+        false);
+  } // end logStartupInfo method
+
   /**
    Build the User Interface. 
   
@@ -533,25 +776,8 @@ public class PSTextMerge
     }
     
     // Set up logging stuff
-    if (logIn != null) {
-      logJuggler.setLogger(logIn);
-    }
-    else
-    if (quietMode) {
-      logJuggler.switchLogOutput (LogJuggler.LOG_DISK_STRING);
-    } 
-    else {
-      // Do nothing now -- wait for log text area to be set up later
-      // logJuggler.switchLogOutput (LogJuggler.LOG_TEXT_STRING);
-    }
-    if (logIn == null) {
-      logJuggler.getLogger().setLogAllData (false);
-      logJuggler.getLogger().setLogThreshold (LogEvent.NORMAL);
-    } else {
-      logJuggler.getLogger().setLogAllData (logIn.getLogAllData());
-      logJuggler.getLogger().setLogThreshold (logIn.getLogThreshold());
-    }
-    
+    setupLogging(logIn);
+
     // Determine which Tabs are to be displayed
     tabConfig = System.getProperty ("tabs", DEFAULT_TABS);
     for (int i = 0; i < tabConfig.length(); i++) {
@@ -649,6 +875,8 @@ public class PSTextMerge
     iconImage = new Image (iconURLString);
     iconLabel = new ImageView (iconImage);
     iconLabel.setVisible (true);
+    fileNameLiteral = new Label ("File Name: ");
+    fileNameLabel = new Label();
     fileNameLiteral.setVisible (true);
     fileNameLabel.setVisible (true);
     if (textMergeInput != null) {
@@ -740,22 +968,9 @@ public class PSTextMerge
     // Help Menu 
     // helpMenu = new JMenu("Help");
     menuBar.getMenus().add (helpMenu);
-    
-    logJuggler.recordEvent (LogEvent.NORMAL,
-        "Application Folder = " + home.getAppFolder().toString(),
-        false);
-    logJuggler.recordEvent (LogEvent.NORMAL,
-        "Java Virtual Machine = " + System.getProperty("java.vm.name") + 
-        " version " + System.getProperty("java.vm.version") +
-        " from " + StringUtils.removeQuotes(System.getProperty("java.vm.vendor")),
-        false);
-    Runtime runtime = Runtime.getRuntime();
-    runtime.gc();
-    NumberFormat numberFormat = NumberFormat.getInstance();
-    logJuggler.recordEvent (LogEvent.NORMAL,
-        "Available Memory = " + numberFormat.format (Runtime.getRuntime().freeMemory()),
-        false);
-		
+
+    logStartupInfo();
+
 		// Set the starting Tab that will be visible
 		if (listAvailable) {
 		  // tabs.getSelectionModel().select(viewTabPosition);
@@ -779,7 +994,7 @@ public class PSTextMerge
     viewPane = new GridPane();
     fxUtils.applyStyle(viewPane);
     
-    setupTableView();
+    setupTableView(true);
     
 		tabTableBuilt = true;
     // setTableModels();
@@ -992,8 +1207,13 @@ public class PSTextMerge
   */
   public void setListAvailable (boolean listAvailable) {
     
+    boolean newlyAvailable = listAvailable && (! this.listAvailable);
     this.listAvailable = listAvailable;
-    setupTableView();
+    setupTableView(newlyAvailable);
+    if (fileNameLabel == null) {
+      // Running headless -- no header to update
+    }
+    else
     if (listAvailable && textMergeInput != null) {
 		  fileNameLabel.setText (textMergeInput.getFileNameToDisplay());
     } else {
@@ -1030,12 +1250,19 @@ public class PSTextMerge
 
   }
   
-  private void setupTableView() {
-    // Update the List View
-    if (viewTable != null) {
-      viewPane.getChildren().remove(viewTable);
+  /**
+   Update the List View. The table is built once and then reused. Its
+   columns are rebuilt whenever a list becomes available, since the fields
+   may have changed even if the record definition object has not; they are
+   only kept when the same list is refreshed, as after a sort or filter.
+
+   @param newlyAvailable True if the list has just become available.
+  */
+  private void setupTableView(boolean newlyAvailable) {
+    if (viewPane == null) {
+      return;
     }
-    if (viewPane != null) {
+    if (viewTable == null) {
       viewTable = new TableView<DataRecord>();
       viewTable.setPlaceholder(new Label("No Input File"));
       viewTable.setMaxWidth(Double.MAX_VALUE);
@@ -1043,18 +1270,33 @@ public class PSTextMerge
       viewPane.add(viewTable, 0, 0, 1, 1);
       GridPane.setHgrow(viewTable, Priority.ALWAYS);
       GridPane.setVgrow(viewTable, Priority.ALWAYS);
-      if (listAvailable
-          && list != null
-          && list.getRecDef() != null
-          && list.getRecDef().getNumberOfFields() > 0) {
-        viewTable.setItems(list.getList());
-        for (int i = 0; i < list.getRecDef().getNumberOfFields(); i++) {
+    }
+    if (listAvailable
+        && list != null
+        && list.getRecDef() != null
+        && list.getRecDef().getNumberOfFields() > 0) {
+      RecordDefinition recDef = list.getRecDef();
+      if (newlyAvailable
+          || recDef != viewRecDef
+          || viewTable.getColumns().size() != recDef.getNumberOfFields()) {
+        viewTable.getColumns().clear();
+        for (int i = 0; i < recDef.getNumberOfFields(); i++) {
           TableColumn nextColumn = list.getTableColumn(i);
           viewTable.getColumns().add(nextColumn);
         }
+        viewRecDef = recDef;
+      }
+      if (viewTable.getItems() == list.getList()) {
+        viewTable.refresh();
+      } else {
+        viewTable.setItems(list.getList());
       }
+    } else {
+      viewTable.setItems(null);
+      viewTable.getColumns().clear();
+      viewRecDef = null;
     }
-  }
+  } // end setupTableView method
 
   /**
    Indicate whether or not a list has been loaded.
@@ -1075,17 +1317,20 @@ public class PSTextMerge
   }
   
   /**
-     Let's wrap things up. 
+     Let's wrap things up. When running headless there is no window, so
+     its size and location are left as they were.
    */
   public void wrapThingsUp() {	
     textMergeScript.stopScriptRecording();
     if (mainClass) {
       textMergeScript.savePrefs();
       textMergeTemplate.savePrefs();
-      userPrefs.setPref (UserPrefs.LEFT, primaryStage.getX());
-      userPrefs.setPref (UserPrefs.TOP, primaryStage.getY());
-      userPrefs.setPref (UserPrefs.WIDTH, primaryStage.getWidth());
-      userPrefs.setPref (UserPrefs.HEIGHT, primaryStage.getHeight());
+      if (primaryStage != null) {
+        userPrefs.setPref (UserPrefs.LEFT, primaryStage.getX());
+        userPrefs.setPref (UserPrefs.TOP, primaryStage.getY());
+        userPrefs.setPref (UserPrefs.WIDTH, primaryStage.getWidth());
+        userPrefs.setPref (UserPrefs.HEIGHT, primaryStage.getHeight());
+      }
       userPrefs.savePrefs();
     }
   }
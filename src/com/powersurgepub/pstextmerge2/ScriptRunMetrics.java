@@ -0,0 +1,251 @@
+/*
+ * Copyright 2026 Herb Bowie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.powersurgepub.pstextmerge2;
+
+  import com.powersurgepub.psutils2.logging.*;
+
+  import java.io.*;
+  import java.lang.management.*;
+  import java.text.*;
+  import java.time.*;
+  import java.time.format.*;
+
+/**
+   Measures the playing of one script: elapsed time, bytes allocated by the
+   playing thread, garbage collection counts and time, and heap in use
+   before and after. The results can be written to the log, and appended to
+   a CSV file next to the script so that runs can be compared over time.
+
+   @author Herb Bowie
+ */
+public class ScriptRunMetrics {
+
+  public    static  final String  METRICS_SUFFIX = "_metrics.csv";
+
+  private   static  final String  CSV_HEADINGS
+      = "Run Date,Script,Elapsed ms,Allocated Bytes,GC Count,GC Time ms,"
+      + "Heap Used Before,Heap Used After";
+
+  // Immutable, so may be shared by every run, on any thread. The offset
+  // keeps run dates unambiguous across daylight saving changes.
+  private   static  final DateTimeFormatter RUN_DATE_FORMAT
+      = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+  private     File                scriptFile;
+
+  private     OffsetDateTime      runDate = null;
+  private     long                startNanos = 0;
+  private     long                elapsedNanos = 0;
+  private     long                startAllocated = 0;
+  private     long                allocated = -1;
+  private     long                startGCCount = 0;
+  private     long                gcCount = 0;
+  private     long                startGCMillis = 0;
+  private     long                gcMillis = 0;
+  private     long                heapBefore = 0;
+  private     long                heapAfter = 0;
+
+  private     NumberFormat        numberFormat = NumberFormat.getInstance();
+
+  /**
+     Prepare to measure the playing of a script.
+
+     @param scriptFile The script to be played.
+   */
+  public ScriptRunMetrics (File scriptFile) {
+    this.scriptFile = scriptFile;
+  }
+
+  /**
+     Take our starting readings. Call just before playing the script.
+   */
+  public void start() {
+    runDate = OffsetDateTime.now().withNano(0);
+    heapBefore = readHeapUsed();
+    startGCCount = readGCCount();
+    startGCMillis = readGCMillis();
+    startAllocated = readAllocatedBytes();
+    startNanos = System.nanoTime();
+  }
+
+  /**
+     Take our ending readings. Call just after the script has been played.
+   */
+  public void finish() {
+    elapsedNanos = System.nanoTime() - startNanos;
+    long endAllocated = readAllocatedBytes();
+    if (startAllocated >= 0 && endAllocated >= 0) {
+      allocated = endAllocated - startAllocated;
+    }
+    gcCount = readGCCount() - startGCCount;
+    gcMillis = readGCMillis() - startGCMillis;
+    heapAfter = readHeapUsed();
+  }
+
+  /**
+     Write a summary of the run to the log.
+
+     @param log The logger to receive the summary.
+   */
+  public void logSummary (Logger log) {
+    log.recordEvent (LogEvent.NORMAL,
+        "Script " + scriptFile.getName() + " metrics", false);
+    log.recordEvent (LogEvent.NORMAL,
+        "  Elapsed Time     = " + numberFormat.format(getElapsedMillis())
+        + " ms", false);
+    if (allocated >= 0) {
+      log.recordEvent (LogEvent.NORMAL,
+          "  Bytes Allocated  = " + numberFormat.format(allocated)
+          + " (" + numberFormat.format(getAllocationRate()) + " per second)",
+          false);
+    }
+    log.recordEvent (LogEvent.NORMAL,
+        "  GC Time          = " + numberFormat.format(gcMillis)
+        + " ms in " + numberFormat.format(gcCount) + " collections", false);
+    log.recordEvent (LogEvent.NORMAL,
+        "  Heap Used        = " + numberFormat.format(heapBefore)
+        + " before, " + numberFormat.format(heapAfter) + " after", false);
+  }
+
+  /**
+     Append one line describing this run to a CSV file next to the script,
+     with the same name as the script plus "_metrics.csv". Headings are
+     written if the file does not exist yet.
+
+     @throws IOException If the file could not be written.
+   */
+  public void appendToCSV()
+      throws IOException {
+    File csvFile = getCSVFile();
+    boolean newFile = (! csvFile.exists());
+    try (PrintWriter csv = new PrintWriter(new FileWriter(csvFile, true))) {
+      if (newFile) {
+        csv.println(CSV_HEADINGS);
+      }
+      csv.println(RUN_DATE_FORMAT.format(runDate)
+          + "," + csvField(scriptFile.getName())
+          + "," + String.valueOf(getElapsedMillis())
+          + "," + String.valueOf(allocated)
+          + "," + String.valueOf(gcCount)
+          + "," + String.valueOf(gcMillis)
+          + "," + String.valueOf(heapBefore)
+          + "," + String.valueOf(heapAfter));
+    }
+  }
+
+  /**
+     Get the CSV file to which runs of this script are appended.
+
+     @return The CSV file, in the same folder as the script.
+   */
+  public File getCSVFile() {
+    String scriptName = scriptFile.getName();
+    int period = scriptName.lastIndexOf('.');
+    if (period > 0) {
+      scriptName = scriptName.substring(0, period);
+    }
+    return new File (scriptFile.getAbsoluteFile().getParentFile(),
+        scriptName + METRICS_SUFFIX);
+  }
+
+  public long getElapsedMillis() {
+    return elapsedNanos / 1000000;
+  }
+
+  /**
+     Get the bytes allocated by the playing thread, or -1 if the virtual
+     machine can't tell us.
+   */
+  public long getAllocated() {
+    return allocated;
+  }
+
+  /**
+     Get the number of bytes allocated per second of elapsed time.
+   */
+  public long getAllocationRate() {
+    if (allocated < 0 || elapsedNanos <= 0) {
+      return 0;
+    }
+    return (long)(allocated * (1000000000.0 / elapsedNanos));
+  }
+
+  public long getGCCount() {
+    return gcCount;
+  }
+
+  public long getGCMillis() {
+    return gcMillis;
+  }
+
+  /**
+     Enclose a field in quotes if it contains anything that would confuse
+     a CSV reader.
+   */
+  private String csvField(String field) {
+    if (field.indexOf(',') >= 0
+        || field.indexOf('"') >= 0) {
+      return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+    return field;
+  }
+
+  private long readHeapUsed() {
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  private long readGCCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc
+        : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (gc.getCollectionCount() > 0) {
+        count = count + gc.getCollectionCount();
+      }
+    }
+    return count;
+  }
+
+  private long readGCMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc
+        : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (gc.getCollectionTime() > 0) {
+        millis = millis + gc.getCollectionTime();
+      }
+    }
+    return millis;
+  }
+
+  /**
+     Get the total bytes allocated so far by the current thread, if the
+     virtual machine supports it, or -1 otherwise.
+   */
+  private long readAllocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean hotSpotThreads
+          = (com.sun.management.ThreadMXBean)threads;
+      if (hotSpotThreads.isThreadAllocatedMemorySupported()
+          && hotSpotThreads.isThreadAllocatedMemoryEnabled()) {
+        return hotSpotThreads.getThreadAllocatedBytes
+            (Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+}